@@ -1,11 +1,24 @@
+import filter.AdmissionControlFilter;
+import filter.ReadinessFilter;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import service.BankClientService;
+import service.WarmUpService;
 import servlet.ApiServlet;
+import servlet.LoginServlet;
 import servlet.MoneyTransactionServlet;
+import servlet.ReadyServlet;
 import servlet.RegistrationServlet;
 import servlet.ResultServlet;
+import util.Readiness;
+
+import javax.servlet.DispatcherType;
+import java.util.EnumSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
     public static void main(String[] args) throws Exception {
@@ -13,14 +26,10 @@ public class Main {
         RegistrationServlet registrationServlet = new RegistrationServlet();
         MoneyTransactionServlet moneyTransactionServlet = new MoneyTransactionServlet();
         ResultServlet resultServlet = new ResultServlet();
-
-        BankClientService clientService = new BankClientService();
-        clientService.createTable();
-
-        /**/
-//        List<BankClient> clientList = clientService.getAllClient();
-//        clientList.forEach(System.out::println);
-        /**/
+        LoginServlet loginServlet = new LoginServlet();
+        ReadyServlet readyServlet = new ReadyServlet();
+        AdmissionControlFilter admissionControlFilter = new AdmissionControlFilter();
+        ReadinessFilter readinessFilter = new ReadinessFilter();
 
         ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
 
@@ -29,11 +38,44 @@ public class Main {
         context.addServlet(new ServletHolder(registrationServlet), "/registration");
         context.addServlet(new ServletHolder(moneyTransactionServlet), "/transaction");
         context.addServlet(new ServletHolder(resultServlet), "/result");
+        context.addServlet(new ServletHolder(loginServlet), "/login");
+        context.addServlet(new ServletHolder(readyServlet), "/ready");
+
+        /* До окончания прогрева на все запросы, кроме /ready, отвечаем 503 */
+        context.addFilter(new FilterHolder(readinessFilter), "/*", EnumSet.of(DispatcherType.REQUEST));
+
+        /* "/" - маппинг по умолчанию, поэтому фильтр вешаем на все пути, а отбор делает сам фильтр */
+        context.addFilter(new FilterHolder(admissionControlFilter), "/*", EnumSet.of(DispatcherType.REQUEST));
 
         Server server = new Server(8080);
         server.setHandler(context);
 
         server.start();
+
+        try {
+            new WarmUpService().run();
+        } catch (RuntimeException e) {
+            server.stop();
+            throw e;
+        }
+        Readiness.getInstance().markReady();
+
+        /* Устаревшие ключи идемпотентности удаляем раз в час, а не только при старте */
+        ScheduledExecutorService purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-key-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                int purged = new BankClientService().purgeIdempotencyKeys();
+                System.out.println("Purged " + purged + " expired idempotency keys");
+            } catch (RuntimeException e) {
+                /* Исключение отменило бы все следующие запуски */
+                System.out.println("Idempotency key purge failed: " + e);
+            }
+        }, 1, 1, TimeUnit.HOURS);
+
         server.join();
     }
 }
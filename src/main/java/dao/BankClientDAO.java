@@ -4,13 +4,83 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import com.sun.istack.internal.NotNull;
 import com.sun.istack.internal.Nullable;
+import exception.IdempotencyKeyMismatchException;
 import model.BankClient;
+import model.Transfer;
 
 public class BankClientDAO implements AutoCloseable {
 
+    /**
+     * Время хранения ключей идемпотентности, в часах. Более старые ключи не учитываются.
+     */
+    public static final int IDEMPOTENCY_KEY_TTL_HOURS = 24;
+
+    private static final String SELECT_CLIENT_BY_NAME = "SELECT * FROM bank_client WHERE name=?";
+
+    private static final String SELECT_CLIENT_BY_ID = "SELECT * FROM bank_client WHERE id=?";
+
+    /**
+     * Блокирует строки обоих участников перевода в порядке возрастания <i>id</i>.
+     * Встречные переводы (A&rarr;B и B&rarr;A) берут блокировки в одном порядке и не попадают в deadlock.
+     */
+    private static final String LOCK_CLIENTS = "SELECT id FROM bank_client WHERE id IN (?, ?) ORDER BY id FOR UPDATE";
+
+    private static final String WITHDRAW_MONEY = "UPDATE bank_client SET money=money-? WHERE id=? AND money>=?";
+
+    private static final String DEPOSIT_MONEY = "UPDATE bank_client SET money=money+? WHERE id=?";
+
+    private static final String INSERT_TRANSFER =
+            "INSERT INTO transfer (client_id, counterparty_id, amount) VALUES (?, ?, ?)";
+
+    private static final String SELECT_TRANSFERS = "SELECT t.id, t.amount, t.created_at, c.name FROM transfer t"
+            + " LEFT JOIN bank_client c ON c.id=t.counterparty_id"
+            + " WHERE t.client_id=? AND t.id<?"
+            + " ORDER BY t.id DESC LIMIT ?";
+
+    private static final String INSERT_IDEMPOTENCY_KEY =
+            "INSERT INTO idempotency_key (client_id, idem_key, recipient_id, amount, result) VALUES (?, ?, ?, ?, FALSE)";
+
+    /**
+     * Проверяет, что ключ есть и еще не устарел. Чтение без блокировки: одновременные повторы
+     * с тем же ключом не ждут друг друга и не попадают в deadlock.
+     */
+    private static final String SELECT_LIVE_IDEMPOTENCY_KEY =
+            "SELECT 1 FROM idempotency_key WHERE client_id=? AND idem_key=? AND created_at>=NOW()-INTERVAL ? HOUR";
+
+    /**
+     * Перезаписывает устаревший ключ для нового перевода. Условие на <code>created_at</code>
+     * в <code>WHERE</code>, поэтому результат не зависит от того, как драйвер считает измененные строки.
+     */
+    private static final String RECLAIM_EXPIRED_IDEMPOTENCY_KEY =
+            "UPDATE idempotency_key SET recipient_id=?, amount=?, result=FALSE, created_at=NOW()"
+                    + " WHERE client_id=? AND idem_key=? AND created_at<NOW()-INTERVAL ? HOUR";
+
+    private static final String MARK_IDEMPOTENCY_KEY_SUCCEEDED =
+            "UPDATE idempotency_key SET result=TRUE WHERE client_id=? AND idem_key=?";
+
+    private static final String SELECT_IDEMPOTENCY_RESULT =
+            "SELECT recipient_id, amount, result FROM idempotency_key"
+                    + " WHERE client_id=? AND idem_key=? AND created_at>=NOW()-INTERVAL ? HOUR";
+
+    /**
+     * Запросы, выполняемые на каждый перевод и поиск клиента.
+     */
+    private static final String[] HOT_STATEMENTS = {
+            SELECT_CLIENT_BY_NAME,
+            SELECT_CLIENT_BY_ID,
+            LOCK_CLIENTS,
+            WITHDRAW_MONEY,
+            DEPOSIT_MONEY,
+            INSERT_TRANSFER,
+            SELECT_TRANSFERS,
+            INSERT_IDEMPOTENCY_KEY,
+            MARK_IDEMPOTENCY_KEY_SUCCEEDED
+    };
+
     private Connection connection;
 
     public BankClientDAO(final Connection connection) {
@@ -43,23 +113,6 @@ public class BankClientDAO implements AutoCloseable {
         }
     }
 
-    /**
-     * Проверяет, есть ли клиент с таким именем и паролем в таблице.
-     *
-     * @param name     имя клиента.
-     * @param password пароль клиента.
-     * @return <code>true</code> - если клиент с таким именем и паролем существует в таблице
-     */
-    public boolean validateClient(final String name, final String password)
-            throws SQLException {
-        BankClient client = getClientBySqlQuery(
-                "SELECT * FROM bank_client WHERE name=? AND password=?",
-                name,
-                password
-        );
-        return client != null;
-    }
-
     /**
      * Вспомогательный метод.<p>Выполняет SQL запрос с параметрами,
      * и если результат содержит хотя бы одного клиента,
@@ -96,65 +149,338 @@ public class BankClientDAO implements AutoCloseable {
     }
 
     /**
-     * Изменяет сумму на счете клиента.
+     * Переводит деньги между счетами двух клиентов в одной транзакции.
+     * <p>Сначала строки обоих клиентов блокируются в порядке возрастания <i>id</i>, чтобы встречные
+     * переводы не блокировали друг друга. Списание выполняется условным <code>UPDATE</code>,
+     * поэтому проверка остатка и изменение суммы происходят атомарно, без отдельного чтения.
+     * <p>В той же транзакции перевод записывается в историю (таблица <code>transfer</code>)
+     * двумя строками - у отправителя и у получателя, одним пакетом.
      *
-     * @param name          имя клиента
-     * @param password      пароль
-     * @param transactValue сумма транзакции (положительная - деньги зачисляются,
-     *                      отрицательная - снимаются)
-     * @throws IllegalStateException в случае, если количество измененных
-     *                               строк в таблице в результате данной операции не равно 1
+     * @param senderId    <i>id</i> отправителя
+     * @param recipientId <i>id</i> получателя
+     * @param value       сумма перевода
+     * @return <code>true</code> - если перевод выполнен, <code>false</code> - если у отправителя
+     * недостаточно денег или одного из клиентов нет в таблице
      */
-    public void updateClientsMoney(
-            final String name,
-            final String password,
-            final long transactValue
+    public boolean transferMoney(final long senderId, final long recipientId, final long value)
+            throws SQLException {
+        return transferMoney(senderId, recipientId, value, null);
+    }
+
+    /**
+     * Переводит деньги между счетами двух клиентов, не более одного раза для данного ключа идемпотентности.
+     * <p>Ключ вместе с получателем и суммой записывается в таблицу <code>idempotency_key</code>
+     * первым запросом транзакции, поэтому одновременный повтор с тем же ключом ждет ее завершения.
+     * Если действующий ключ уже есть, перевод не выполняется, а возвращается сохраненный результат.
+     * Отказ из-за нехватки денег тоже сохраняется. Ключи старше
+     * <code>IDEMPOTENCY_KEY_TTL_HOURS</code> считаются свободными.
+     *
+     * @param senderId       <i>id</i> отправителя
+     * @param recipientId    <i>id</i> получателя
+     * @param value          сумма перевода
+     * @param idempotencyKey ключ идемпотентности, уникальный для отправителя, или <code>null</code>
+     * @return <code>true</code> - если перевод выполнен (сейчас или ранее с тем же ключом)
+     * @throws IdempotencyKeyMismatchException если ключ уже использован с другим получателем или суммой
+     */
+    public boolean transferMoney(
+            final long senderId,
+            final long recipientId,
+            final long value,
+            final @Nullable String idempotencyKey
     )
             throws SQLException {
 
-        int updatedRows = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            switch (executeTransfer(senderId, recipientId, value, idempotencyKey)) {
+                case KEY_TAKEN:
+                    connection.rollback();
+                    return getIdempotentResult(senderId, idempotencyKey, recipientId, value);
+                case INSUFFICIENT_FUNDS:
+                    /* Ничего не изменено, сохраняем только ключ с отказом */
+                    connection.commit();
+                    return false;
+                case NO_RECIPIENT:
+                    connection.rollback();
+                    return false;
+                default:
+                    connection.commit();
+                    return true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Прогревает путь перевода целиком: создает двух временных клиентов и выполняет между ними
+     * <code>iterations</code> переводов с ключом идемпотентности - теми же запросами, что и
+     * {@link #transferMoney(long, long, long, String)}. Каждый перевод откатывается к точке сохранения,
+     * а в конце откатывается вся транзакция, так что данные в таблицах не меняются.
+     *
+     * @param iterations количество переводов
+     */
+    public void warmUpTransfers(final int iterations) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            String name = "warm-up-" + UUID.randomUUID();
+            long senderId = insertTemporaryClient(name + "-sender", 1);
+            long recipientId = insertTemporaryClient(name + "-recipient", 0);
+            for (int i = 0; i < iterations; i++) {
+                Savepoint savepoint = connection.setSavepoint();
+                executeTransfer(senderId, recipientId, 1, name);
+                connection.rollback(savepoint);
+            }
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private long insertTemporaryClient(final String name, final long money) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO bank_client (name, password, money) values (?, '', ?)",
+                Statement.RETURN_GENERATED_KEYS)
+        ) {
+            stmt.setString(1, name);
+            stmt.setLong(2, money);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Выполняет запросы перевода в текущей транзакции, не завершая ее.
+     */
+    private TransferOutcome executeTransfer(
+            final long senderId,
+            final long recipientId,
+            final long value,
+            final @Nullable String idempotencyKey
+    )
+            throws SQLException {
+
+        try (PreparedStatement lock = connection.prepareStatement(LOCK_CLIENTS);
+             PreparedStatement withdraw = connection.prepareStatement(WITHDRAW_MONEY);
+             PreparedStatement deposit = connection.prepareStatement(DEPOSIT_MONEY);
+             PreparedStatement history = connection.prepareStatement(INSERT_TRANSFER)
+        ) {
+            if (idempotencyKey != null && !claimIdempotencyKey(senderId, idempotencyKey, recipientId, value)) {
+                return TransferOutcome.KEY_TAKEN;
+            }
+
+            lock.setLong(1, senderId);
+            lock.setLong(2, recipientId);
+            lock.executeQuery().close();
+
+            withdraw.setLong(1, value);
+            withdraw.setLong(2, senderId);
+            withdraw.setLong(3, value);
+            if (withdraw.executeUpdate() != 1) {
+                return TransferOutcome.INSUFFICIENT_FUNDS;
+            }
+
+            deposit.setLong(1, value);
+            deposit.setLong(2, recipientId);
+            if (deposit.executeUpdate() != 1) {
+                return TransferOutcome.NO_RECIPIENT;
+            }
+
+            history.setLong(1, senderId);
+            history.setLong(2, recipientId);
+            history.setLong(3, -value);
+            history.addBatch();
+
+            history.setLong(1, recipientId);
+            history.setLong(2, senderId);
+            history.setLong(3, value);
+            history.addBatch();
+
+            history.executeBatch();
+            if (idempotencyKey != null) {
+                markIdempotencyKeySucceeded(senderId, idempotencyKey);
+            }
+            return TransferOutcome.DONE;
+        }
+    }
+
+    /**
+     * Возвращает сохраненный результат перевода с данным ключом идемпотентности.
+     *
+     * @param senderId       <i>id</i> отправителя
+     * @param idempotencyKey ключ идемпотентности
+     * @param recipientId    <i>id</i> получателя в повторном запросе
+     * @param value          сумма в повторном запросе
+     * @return сохраненный результат перевода
+     * @throws IdempotencyKeyMismatchException если ключ был использован с другим получателем или суммой
+     * @throws SQLException                    если действующего ключа нет
+     */
+    public boolean getIdempotentResult(
+            final long senderId,
+            final String idempotencyKey,
+            final long recipientId,
+            final long value
+    )
+            throws SQLException {
+
+        try (PreparedStatement stmt = connection.prepareStatement(SELECT_IDEMPOTENCY_RESULT)) {
+            stmt.setLong(1, senderId);
+            stmt.setString(2, idempotencyKey);
+            stmt.setInt(3, IDEMPOTENCY_KEY_TTL_HOURS);
+            try (ResultSet result = stmt.executeQuery()) {
+                if (!result.next()) {
+                    throw new SQLException("Idempotency key not found: " + idempotencyKey);
+                }
+                if (result.getLong("recipient_id") != recipientId || result.getLong("amount") != value) {
+                    throw new IdempotencyKeyMismatchException(
+                            "Idempotency key was used for a different transfer: " + idempotencyKey);
+                }
+                return result.getBoolean("result");
+            }
+        }
+    }
 
-        if (validateClient(name, password)) {
+    /**
+     * Удаляет ключи идемпотентности старше <code>IDEMPOTENCY_KEY_TTL_HOURS</code>.
+     * Срок считается по часам сервера БД, как и при проверке ключа.
+     *
+     * @return количество удаленных ключей
+     */
+    public int deleteExpiredIdempotencyKeys() throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "DELETE FROM idempotency_key WHERE created_at<NOW()-INTERVAL ? HOUR")
+        ) {
+            stmt.setInt(1, IDEMPOTENCY_KEY_TTL_HOURS);
+            return stmt.executeUpdate();
+        }
+    }
 
-            BankClient client = getClientByName(name);
-            long finalAmount = client.getMoney() + transactValue;
+    /**
+     * Занимает ключ идемпотентности в текущей транзакции.
+     *
+     * @return <code>true</code> - если ключ свободен (новый или устаревший),
+     * <code>false</code> - если он уже занят действующим запросом
+     */
+    private boolean claimIdempotencyKey(
+            final long senderId,
+            final String idempotencyKey,
+            final long recipientId,
+            final long value
+    )
+            throws SQLException {
 
-            if (finalAmount >= 0) {
-                try (PreparedStatement stmt = connection.prepareStatement(
-                        "UPDATE bank_client SET money=? WHERE id=?")
-                ) {
-                    stmt.setLong(1, finalAmount);
-                    stmt.setLong(2, client.getId());
-                    updatedRows = stmt.executeUpdate();
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_IDEMPOTENCY_KEY)) {
+            insert.setLong(1, senderId);
+            insert.setString(2, idempotencyKey);
+            insert.setLong(3, recipientId);
+            insert.setLong(4, value);
+            insert.executeUpdate();
+            return true;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            /* Ключ уже есть. Ошибка отменяет только этот запрос, транзакция продолжается */
+        }
+
+        try (PreparedStatement live = connection.prepareStatement(SELECT_LIVE_IDEMPOTENCY_KEY)) {
+            live.setLong(1, senderId);
+            live.setString(2, idempotencyKey);
+            live.setInt(3, IDEMPOTENCY_KEY_TTL_HOURS);
+            try (ResultSet result = live.executeQuery()) {
+                if (result.next()) {
+                    return false;
                 }
             }
         }
-        if (updatedRows != 1) { // TODO: подумать, что с этим делать
-            throw new IllegalStateException("Error while updating clients money!");
+
+        try (PreparedStatement reclaim = connection.prepareStatement(RECLAIM_EXPIRED_IDEMPOTENCY_KEY)) {
+            reclaim.setLong(1, recipientId);
+            reclaim.setLong(2, value);
+            reclaim.setLong(3, senderId);
+            reclaim.setString(4, idempotencyKey);
+            reclaim.setInt(5, IDEMPOTENCY_KEY_TTL_HOURS);
+            /* 0 - ключ уже перезаписал другой запрос */
+            return reclaim.executeUpdate() == 1;
+        }
+    }
+
+    private void markIdempotencyKeySucceeded(final long senderId, final String idempotencyKey)
+            throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(MARK_IDEMPOTENCY_KEY_SUCCEEDED)) {
+            stmt.setLong(1, senderId);
+            stmt.setString(2, idempotencyKey);
+            stmt.executeUpdate();
         }
     }
 
     /**
-     * Возвращает клиента по его <i>id</i>, или <code>null</code> если такого клиента нет.
+     * Возвращает страницу истории переводов клиента, от новых к старым.
+     * <p>Используется keyset-пагинация: следующая страница запрашивается с <code>beforeId</code>,
+     * равным <i>id</i> последней записи предыдущей страницы. Записи клиента хранятся рядом
+     * (первичный ключ <code>(client_id, id)</code>), поэтому запрос читает только
+     * <code>limit</code> строк независимо от размера таблицы.
+     * <p>Если контрагент удален из таблицы клиентов, запись все равно возвращается, с пустым именем.
      *
-     * @param id <i>id</i> клиента
-     * @return объект <code>BankClient</code> или <code>null</code> если такого клиента нет
+     * @param clientId <i>id</i> клиента
+     * @param beforeId вернуть записи с <i>id</i> меньше данного, или <code>null</code> - с самой новой
+     * @param limit    максимальное количество записей
+     * @return список переводов или пустой список
      */
-    public @Nullable
-    BankClient getClientById(final Long id) throws SQLException {
-        return getClientBySqlQuery("SELECT * FROM bank_client WHERE id=?", id.toString());
+    public @NotNull
+    List<Transfer> getTransfers(final long clientId, final @Nullable Long beforeId, final int limit)
+            throws SQLException {
+
+        try (PreparedStatement stmt = connection.prepareStatement(SELECT_TRANSFERS)
+        ) {
+            stmt.setLong(1, clientId);
+            stmt.setLong(2, (beforeId != null) ? beforeId : Long.MAX_VALUE);
+            stmt.setInt(3, limit);
+            try (ResultSet result = stmt.executeQuery()) {
+                List<Transfer> transfers = new ArrayList<>();
+                while (result.next()) {
+                    transfers.add(new Transfer(
+                            result.getLong("id"),
+                            result.getString("name"),
+                            result.getLong("amount"),
+                            result.getTimestamp("created_at").getTime()
+                    ));
+                }
+                return (transfers.isEmpty()) ? Collections.emptyList() : transfers;
+            }
+        }
     }
 
     /**
-     * Проверяет, есть ли на счете клиента с данным именем сумма большая или равная ожидаемой.
+     * Заменяет сохраненный пароль клиента.
      *
-     * @param name        имя клиента
-     * @param expectedSum ожидаемая сумма
-     * @return <code>true</code>, если такой клиент есть, и сумма на его счете не меньше <code>expectedSum</code>
+     * @param id       <i>id</i> клиента
+     * @param password новое значение (хеш пароля)
      */
-    public boolean isClientHasSum(final String name, final long expectedSum) throws SQLException {
-        BankClient client = getClientByName(name);
-        return (client != null) && (client.getMoney() >= expectedSum);
+    public void updateClientPassword(final long id, final String password) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "UPDATE bank_client SET password=? WHERE id=?")
+        ) {
+            stmt.setString(1, password);
+            stmt.setLong(2, id);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Возвращает клиента по его <i>id</i>, или <code>null</code> если такого клиента нет.
+     *
+     * @param id <i>id</i> клиента
+     * @return объект <code>BankClient</code> или <code>null</code> если такого клиента нет
+     */
+    public @Nullable
+    BankClient getClientById(final Long id) throws SQLException {
+        return getClientBySqlQuery(SELECT_CLIENT_BY_ID, id.toString());
     }
 
     /**
@@ -177,7 +503,7 @@ public class BankClientDAO implements AutoCloseable {
      */
     public @Nullable
     BankClient getClientByName(final String name) throws SQLException {
-        return getClientBySqlQuery("SELECT * FROM bank_client WHERE name=?", name);
+        return getClientBySqlQuery(SELECT_CLIENT_BY_NAME, name);
     }
 
     /**
@@ -222,19 +548,80 @@ public class BankClientDAO implements AutoCloseable {
         }
     }
 
+    /**
+     * Заранее подготавливает часто выполняемые запросы на данном соединении.
+     * <p>При включенном кэше (<code>cachePrepStmts=true</code>) закрытые запросы остаются
+     * подготовленными на сервере, и первые реальные запросы не тратят время на разбор SQL.
+     */
+    public void prepareStatements() throws SQLException {
+        for (String sql : HOT_STATEMENTS) {
+            connection.prepareStatement(sql).close();
+        }
+    }
+
     public void createTable() throws SQLException {
         try (Statement stmt = connection.createStatement()) {
             stmt.execute("CREATE TABLE IF NOT EXISTS bank_client ("
                     + "`id` BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,"
                     + "`name` VARCHAR(255) NOT NULL,"
                     + "`password` VARCHAR(60) NOT NULL,"
-                    + "`money` BIGINT NOT NULL)"
+                    + "`money` BIGINT NOT NULL,"
+                    + "UNIQUE KEY `uk_bank_client_name` (`name`))"
+            );
+            /* История переводов хранится по клиентам: первичный ключ (client_id, id) -
+               записи одного клиента лежат рядом в порядке времени, а вставки идут в конец */
+            stmt.execute("CREATE TABLE IF NOT EXISTS transfer ("
+                    + "`id` BIGINT NOT NULL AUTO_INCREMENT,"
+                    + "`client_id` BIGINT NOT NULL,"
+                    + "`counterparty_id` BIGINT NOT NULL,"
+                    + "`amount` BIGINT NOT NULL,"
+                    + "`created_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),"
+                    + "PRIMARY KEY (`client_id`, `id`),"
+                    + "KEY `idx_transfer_id` (`id`))"
+            );
+            stmt.execute("CREATE TABLE IF NOT EXISTS idempotency_key ("
+                    + "`client_id` BIGINT NOT NULL,"
+                    + "`idem_key` VARCHAR(64) NOT NULL,"
+                    + "`recipient_id` BIGINT NOT NULL,"
+                    + "`amount` BIGINT NOT NULL,"
+                    + "`result` BOOLEAN NOT NULL,"
+                    + "`created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                    + "PRIMARY KEY (`client_id`, `idem_key`),"
+                    + "KEY `idx_idempotency_key_created_at` (`created_at`))"
             );
         }
+        addClientNameIndex();
+    }
+
+    /**
+     * Добавляет уникальный индекс по имени клиента в таблицу, созданную до его появления.
+     * <p>Если в таблице уже есть клиенты с одинаковыми именами, индекс создать нельзя:
+     * об этом выводится сообщение, и приложение продолжает работу без индекса.
+     */
+    private void addClientNameIndex() throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT 1 FROM information_schema.statistics"
+                        + " WHERE table_schema=DATABASE() AND table_name='bank_client' AND index_name=?")
+        ) {
+            stmt.setString(1, "uk_bank_client_name");
+            try (ResultSet result = stmt.executeQuery()) {
+                if (result.next()) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE bank_client ADD UNIQUE KEY `uk_bank_client_name` (`name`)");
+        } catch (SQLIntegrityConstraintViolationException e) {
+            System.out.println("Can't add unique index on bank_client.name, duplicate names exist: "
+                    + e.getMessage());
+        }
     }
 
     public void dropTable() throws SQLException {
         try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS idempotency_key");
+            stmt.execute("DROP TABLE IF EXISTS transfer");
             stmt.execute("DROP TABLE IF EXISTS bank_client");
         }
     }
@@ -248,4 +635,14 @@ public class BankClientDAO implements AutoCloseable {
             connection.close();
         }
     }
+
+    private enum TransferOutcome {
+        /**
+         * Ключ идемпотентности уже занят действующим запросом
+         */
+        KEY_TAKEN,
+        INSUFFICIENT_FUNDS,
+        NO_RECIPIENT,
+        DONE
+    }
 }
@@ -0,0 +1,10 @@
+package exception;
+
+/**
+ * Перевод с этим ключом идемпотентности еще выполняется, повтор нужно отправить позже.
+ */
+public class IdempotencyKeyInProgressException extends RuntimeException {
+    public IdempotencyKeyInProgressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package exception;
+
+/**
+ * Ключ идемпотентности уже использован для перевода с другими параметрами (получатель или сумма).
+ */
+public class IdempotencyKeyMismatchException extends RuntimeException {
+    public IdempotencyKeyMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,186 @@
+package filter;
+
+import service.AuthService;
+import servlet.LoginServlet;
+import util.Metrics;
+import util.PageGenerator;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фильтр допуска для пишущих запросов: ограничиваются все <code>POST</code>-запросы, включая
+ * <code>/transaction</code>, <code>/login</code> и <code>/registration</code> (в том числе под любым
+ * несопоставленным путем, который обслуживает сервлет по умолчанию).
+ * <p>Каждый запрос должен получить токен из корзины (token bucket) своего клиента: клиента,
+ * выполнившего вход, - по его имени из сессии, остальных - по IP-адресу. Имя из параметров формы
+ * не используется: иначе любой мог бы исчерпать корзину чужого клиента, подставив его имя.
+ * При исчерпании корзины запрос отклоняется с кодом <code>429</code>.
+ * <p>Кроме того, число одновременно обрабатываемых пишущих запросов ограничено, чтобы
+ * не исчерпать соединения с БД. Запросы сверх лимита сразу отклоняются с кодом <code>503</code>
+ * и не доходят до <code>BankClientService</code>.
+ */
+public class AdmissionControlFilter implements Filter {
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextEvictionAt = new AtomicLong(System.nanoTime() + EVICTION_INTERVAL_NANOS);
+
+    private final double permitsPerSecond;
+
+    private final int burst;
+
+    private final Semaphore inFlight;
+
+    private final int maxConcurrent;
+
+    public AdmissionControlFilter() {
+        this(5.0, 10, 32);
+    }
+
+    /**
+     * @param permitsPerSecond скорость пополнения корзины одного клиента (запросов в секунду)
+     * @param burst            емкость корзины одного клиента
+     * @param maxConcurrent    максимальное число одновременно обрабатываемых пишущих запросов
+     */
+    public AdmissionControlFilter(double permitsPerSecond, int burst, int maxConcurrent) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxConcurrent = maxConcurrent;
+        this.inFlight = new Semaphore(maxConcurrent);
+
+        Metrics metrics = Metrics.getInstance();
+        metrics.registerGauge("admission.buckets", buckets::size);
+        metrics.registerGauge("admission.inFlight", () -> this.maxConcurrent - inFlight.availablePermits());
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+
+        /* Страницы с формами не ограничиваем, только запись */
+        if (!"POST".equals(req.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Metrics metrics = Metrics.getInstance();
+        long now = System.nanoTime();
+        evictIdleBuckets(now);
+
+        String clientName = AuthService.getInstance().getClientName(LoginServlet.getAuthToken(req));
+        String bucketKey = (clientName != null) ? "name:" + clientName : "ip:" + req.getRemoteAddr();
+        if (!tryAcquire(bucketKey, now)) {
+            metrics.increment("admission.rejected.rateLimited");
+            reject(resp, SC_TOO_MANY_REQUESTS, "Too many requests, try again later");
+            return;
+        }
+
+        if (!inFlight.tryAcquire()) {
+            metrics.increment("admission.rejected.overloaded");
+            reject(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server is busy, try again later");
+            return;
+        }
+        try {
+            metrics.increment("admission.accepted");
+            chain.doFilter(request, response);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private boolean tryAcquire(String key, long now) {
+        return buckets
+                .computeIfAbsent(key, k -> new TokenBucket(burst, permitsPerSecond, now))
+                .tryAcquire(now);
+    }
+
+    /**
+     * Удаляет корзины, к которым давно не обращались. Очистку выполняет только один поток,
+     * выигравший CAS на <code>nextEvictionAt</code>, остальные сразу продолжают работу.
+     */
+    private void evictIdleBuckets(long now) {
+        long evictAt = nextEvictionAt.get();
+        if (now - evictAt < 0 || !nextEvictionAt.compareAndSet(evictAt, now + EVICTION_INTERVAL_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.isIdle(now, IDLE_TIMEOUT_NANOS));
+    }
+
+    private static void reject(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        resp.setHeader("Retry-After", "1");
+
+        Map<String, Object> pageVariables = new HashMap<>();
+        pageVariables.put("message", message);
+        resp.getWriter().println(
+                PageGenerator
+                        .getInstance()
+                        .getPage("resultPage.html", pageVariables)
+        );
+    }
+
+    /**
+     * Корзина токенов одного клиента. Блокировка берется на уровне отдельной корзины,
+     * поэтому разные клиенты друг другу не мешают.
+     */
+    private static final class TokenBucket {
+
+        private final double capacity;
+
+        private final double permitsPerNano;
+
+        private double tokens;
+
+        private long refilledAt;
+
+        private volatile long lastAccess;
+
+        TokenBucket(double capacity, double permitsPerSecond, long now) {
+            this.capacity = capacity;
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = capacity;
+            this.refilledAt = now;
+            this.lastAccess = now;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            lastAccess = now;
+            if (now > refilledAt) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerNano);
+                refilledAt = now;
+            }
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return true;
+            }
+            return false;
+        }
+
+        boolean isIdle(long now, long idleTimeout) {
+            return now - lastAccess > idleTimeout;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package filter;
+
+import util.Readiness;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Пока приложение не прогрето, отвечает <code>503</code> на все запросы, кроме <code>/ready</code>.
+ */
+public class ReadinessFilter implements Filter {
+
+    private static final String READY_PATH = "/ready";
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest req = (HttpServletRequest) request;
+        if (Readiness.getInstance().isReady() || READY_PATH.equals(req.getServletPath())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletResponse resp = (HttpServletResponse) response;
+        resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        resp.setHeader("Retry-After", "1");
+    }
+}
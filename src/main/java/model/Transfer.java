@@ -0,0 +1,66 @@
+package model;
+
+/**
+ * Запись в истории переводов клиента.
+ * <p>Каждый перевод сохраняется двумя записями: у отправителя с отрицательной суммой,
+ * у получателя - с положительной. Имя контрагента равно <code>null</code>, если он удален.
+ */
+public class Transfer {
+    private long id;
+    private String counterparty;
+    private long amount;
+    private long time;
+
+    public Transfer() {
+
+    }
+
+    public Transfer(long id, String counterparty, long amount, long time) {
+        this.id = id;
+        this.counterparty = counterparty;
+        this.amount = amount;
+        this.time = time;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getCounterparty() {
+        return counterparty;
+    }
+
+    public void setCounterparty(String counterparty) {
+        this.counterparty = counterparty;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    @Override
+    public String toString() {
+        return "Transfer{"
+                + "id=" + id
+                + ", counterparty='" + counterparty + '\''
+                + ", amount=" + amount
+                + ", time=" + time
+                + '}';
+    }
+}
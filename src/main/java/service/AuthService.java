@@ -0,0 +1,140 @@
+package service;
+
+import com.sun.istack.internal.Nullable;
+import model.BankClient;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Таблица авторизованных сессий в памяти.
+ * <p>После входа клиент получает токен, который хранится в HTTP-сессии.
+ * Пока токен не истек, запросы клиента авторизуются по этой таблице,
+ * без обращения к БД и без повторной проверки пароля.
+ */
+public class AuthService {
+
+    /**
+     * Имя атрибута HTTP-сессии, в котором хранится токен.
+     */
+    public static final String SESSION_ATTRIBUTE = "authToken";
+
+    /**
+     * Имя атрибута HTTP-сессии, в котором хранится CSRF-токен. Запрос, авторизованный по сессии,
+     * должен передать этот токен в форме, иначе он мог быть отправлен со стороннего сайта.
+     */
+    public static final String CSRF_ATTRIBUTE = "csrfToken";
+
+    private static final long SESSION_TTL_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final AuthService authService = new AuthService();
+
+    private final ConcurrentMap<String, AuthSession> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextEvictionAt = new AtomicLong(System.nanoTime() + EVICTION_INTERVAL_NANOS);
+
+    private final SecureRandom random = new SecureRandom();
+
+    public static AuthService getInstance() {
+        return authService;
+    }
+
+    private AuthService() {
+    }
+
+    /**
+     * Создает авторизованную сессию для клиента, пароль которого уже проверен.
+     *
+     * @param client клиент
+     * @return токен сессии
+     */
+    public String login(BankClient client) {
+        String token = newToken();
+        long now = System.nanoTime();
+        evictExpired(now);
+        sessions.put(token, new AuthSession(client.getId(), client.getName(), now + SESSION_TTL_NANOS));
+        return token;
+    }
+
+    /**
+     * Создает новый случайный CSRF-токен для HTTP-сессии.
+     */
+    public String newCsrfToken() {
+        return newToken();
+    }
+
+    public void logout(@Nullable String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Возвращает <i>id</i> клиента по токену, или <code>null</code> если токен неизвестен или истек.
+     */
+    public @Nullable
+    Long getClientId(@Nullable String token) {
+        AuthSession session = getSession(token);
+        return (session != null) ? session.clientId : null;
+    }
+
+    /**
+     * Возвращает имя клиента по токену, или <code>null</code> если токен неизвестен или истек.
+     */
+    public @Nullable
+    String getClientName(@Nullable String token) {
+        AuthSession session = getSession(token);
+        return (session != null) ? session.clientName : null;
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private @Nullable
+    AuthSession getSession(@Nullable String token) {
+        if (token == null) {
+            return null;
+        }
+        AuthSession session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (System.nanoTime() - session.expiresAt > 0) {
+            sessions.remove(token, session);
+            return null;
+        }
+        return session;
+    }
+
+    private void evictExpired(long now) {
+        long evictAt = nextEvictionAt.get();
+        if (now - evictAt < 0 || !nextEvictionAt.compareAndSet(evictAt, now + EVICTION_INTERVAL_NANOS)) {
+            return;
+        }
+        sessions.values().removeIf(session -> now - session.expiresAt > 0);
+    }
+
+    private static final class AuthSession {
+
+        private final long clientId;
+
+        private final String clientName;
+
+        private final long expiresAt;
+
+        AuthSession(long clientId, String clientName, long expiresAt) {
+            this.clientId = clientId;
+            this.clientName = clientName;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
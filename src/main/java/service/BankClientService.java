@@ -4,22 +4,68 @@ import com.sun.istack.internal.NotNull;
 import com.sun.istack.internal.Nullable;
 import dao.BankClientDAO;
 import exception.DBException;
+import exception.IdempotencyKeyInProgressException;
+import exception.IdempotencyKeyMismatchException;
 import model.BankClient;
+import model.Transfer;
+import util.DataSourceRouter;
+import util.ExpiringCache;
+import util.Metrics;
+import util.PasswordHasher;
 
-import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class BankClientService {
 
+    /**
+     * Максимальная длина ключа идемпотентности (колонка <code>idempotency_key.idem_key</code>).
+     */
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    /**
+     * Сколько повтор запроса ждет завершения перевода с тем же ключом, в секундах.
+     */
+    private static final long IDEMPOTENT_WAIT_SECONDS = 10;
+
+    /**
+     * Переводы по ключу "<i>id</i> отправителя:ключ идемпотентности".
+     * Пока перевод выполняется, повтор с тем же ключом ждет его результата.
+     */
+    private static final ExpiringCache<String, IdempotentTransfer> idempotencyCache =
+            new ExpiringCache<>(10_000, BankClientDAO.IDEMPOTENCY_KEY_TTL_HOURS, TimeUnit.HOURS);
+
+    static {
+        Metrics metrics = Metrics.getInstance();
+        metrics.registerGauge("idempotency.cache.size", idempotencyCache::size);
+        metrics.registerGauge("idempotency.cache.hitRatePercent", () -> {
+            long hits = metrics.getCount("idempotency.cache.hits");
+            long total = hits + metrics.getCount("idempotency.cache.misses");
+            return (total > 0) ? hits * 100 / total : 0;
+        });
+    }
+
+    private final String sessionKey;
+
     public BankClientService() {
+        this(null);
+    }
+
+    /**
+     * @param sessionKey идентификатор сессии клиента, используется для read-your-writes:
+     *                   после записи чтения этой сессии некоторое время идут на основной сервер БД
+     */
+    public BankClientService(@Nullable String sessionKey) {
+        this.sessionKey = sessionKey;
     }
 
     public @Nullable
     BankClient getClientById(long id) throws DBException {
-        try (BankClientDAO dao = getBankClientDAO()) {
+        try (BankClientDAO dao = getReadBankClientDAO()) {
             return dao.getClientById(id);
         } catch (SQLException e) {
             throw new DBException(e);
@@ -35,13 +81,41 @@ public class BankClientService {
      */
     public @Nullable
     BankClient getClientByName(String name) throws DBException {
-        try (BankClientDAO dao = getBankClientDAO()) {
+        try (BankClientDAO dao = getReadBankClientDAO()) {
             return dao.getClientByName(name);
         } catch (SQLException e) {
             throw new DBException(e);
         }
     }
 
+    /**
+     * Проверяет имя и пароль клиента.
+     * <p>Если пароль клиента сохранен открытым текстом (до перехода на BCrypt),
+     * то при успешной проверке он заменяется на хеш.
+     * <p>Клиент читается с основного сервера БД: только что зарегистрированный клиент
+     * может еще не попасть на реплику, а решение о перезаписи пароля нельзя принимать по устаревшим данным.
+     *
+     * @param name     имя клиента
+     * @param password пароль клиента
+     * @return объект <code>BankClient</code>, или <code>null</code> если такого клиента нет или пароль неверный
+     * @throws DBException если во время выполнения запроса было выброшено <code>SQLException</code>
+     */
+    public @Nullable
+    BankClient authenticate(String name, String password) throws DBException {
+        try (BankClientDAO dao = getBankClientDAO()) {
+            BankClient client = dao.getClientByName(name);
+            if (client == null || !PasswordHasher.matches(password, client.getPassword())) {
+                return null;
+            }
+            if (!PasswordHasher.isHashed(client.getPassword())) {
+                dao.updateClientPassword(client.getId(), PasswordHasher.hash(password));
+            }
+            return client;
+        } catch (SQLException e) {
+            throw new DBException(e);
+        }
+    }
+
     /**
      * Возвращает список всех клиентов в таблице или пустой список, если клиентов нет.
      *
@@ -50,13 +124,32 @@ public class BankClientService {
      */
     public @NotNull
     List<BankClient> getAllClient() {
-        try (BankClientDAO dao = getBankClientDAO()) {
+        try (BankClientDAO dao = getReadBankClientDAO()) {
             return dao.getAllBankClient();
         } catch (SQLException e) {
             throw new DBException(e);
         }
     }
 
+    /**
+     * Возвращает страницу истории переводов клиента, от новых к старым.
+     *
+     * @param name     имя клиента
+     * @param beforeId вернуть переводы с <i>id</i> меньше данного, или <code>null</code> - с самого нового
+     * @param limit    максимальное количество записей
+     * @return список переводов, или <code>null</code> если такого клиента нет
+     * @throws DBException если во время выполнения запроса было выброшено <code>SQLException</code>
+     */
+    public @Nullable
+    List<Transfer> getTransfers(String name, @Nullable Long beforeId, int limit) throws DBException {
+        try (BankClientDAO dao = getReadBankClientDAO()) {
+            Long clientId = dao.getClientIdByName(name);
+            return (clientId != null) ? dao.getTransfers(clientId, beforeId, limit) : null;
+        } catch (SQLException e) {
+            throw new DBException(e);
+        }
+    }
+
     /**
      * Удаляет клиента с данным именем из таблицы.
      *
@@ -65,11 +158,12 @@ public class BankClientService {
      * @throws DBException если во время выполнения запроса было выброшено <code>SQLException</code> или <code>IllegalStateException</code>
      */
     public boolean deleteClient(String name) {
-        if (getClientByName(name) == null) {
-            return false;
-        }
         try (BankClientDAO dao = getBankClientDAO()) {
+            if (dao.getClientByName(name) == null) {
+                return false;
+            }
             dao.deleteClient(name);
+            DataSourceRouter.getInstance().recordWrite(sessionKey);
             return true;
         } catch (IllegalStateException | SQLException e) {
             throw new DBException(e);
@@ -77,18 +171,23 @@ public class BankClientService {
     }
 
     /**
-     * Добавляет клиента в таблицу.
+     * Добавляет клиента в таблицу. Пароль сохраняется в виде хеша BCrypt.
      *
      * @param client объект <code>BankClient</code>
      * @return <code>true</code> в случае успеха, <code>false</code> в случае если такой клиент уже есть в таблице
      * @throws DBException если во время выполнения запроса было выброшено <code>SQLException</code> или <code>IllegalStateException</code>
      */
     public boolean addClient(BankClient client) throws DBException {
-        if (getClientByName(client.getName()) != null) {
-            return false;
-        }
         try (BankClientDAO dao = getBankClientDAO()) {
-            dao.addClient(client);
+            if (dao.getClientByName(client.getName()) != null) {
+                return false;
+            }
+            dao.addClient(new BankClient(
+                    client.getName(),
+                    PasswordHasher.hash(client.getPassword()),
+                    client.getMoney()
+            ));
+            DataSourceRouter.getInstance().recordWrite(sessionKey);
             return true;
         } catch (SQLException | IllegalStateException e) {
             throw new DBException(e);
@@ -97,30 +196,116 @@ public class BankClientService {
 
     /**
      * Переводит деньги от одного клиента другому.
+     * <p>Отправитель должен быть предварительно авторизован, пароль здесь не проверяется.
+     *
+     * @param senderId <i>id</i> клиента от которого переводятся деньги
+     * @param name     имя клиента которому переводятся деньги
+     * @param value    сумма перевода
+     * @return <code>true</code> в случае успеха
+     * @throws DBException если во время выполнения запроса было выброшено <code>SQLException</code>
+     */
+    public boolean sendMoneyToClient(long senderId, String name, long value) {
+        return sendMoneyToClient(senderId, name, value, null);
+    }
+
+    /**
+     * Переводит деньги от одного клиента другому не более одного раза для данного ключа идемпотентности.
+     * <p>Повтор запроса с уже известным ключом возвращает результат первого запроса, не выполняя
+     * перевод заново: сначала результат ищется в кэше, затем - в таблице <code>idempotency_key</code>.
+     * Повтор с тем же ключом, но другим получателем или суммой, отклоняется.
      *
-     * @param sender клиент от которого переводятся деньги
-     * @param name   имя клиента которому переводятся деньги
-     * @param value  сумма перевода
+     * @param senderId       <i>id</i> клиента от которого переводятся деньги
+     * @param name           имя клиента которому переводятся деньги
+     * @param value          сумма перевода
+     * @param idempotencyKey ключ идемпотентности или <code>null</code>
      * @return <code>true</code> в случае успеха
-     * @throws DBException если во время выполнения запроса было выброшено
-     *                     <code>SQLException</code> или <code>IllegalStateException</code>
+     * @throws DBException                       если во время выполнения запроса было выброшено <code>SQLException</code>
+     * @throws IdempotencyKeyMismatchException   если ключ уже использован с другим получателем или суммой
+     * @throws IdempotencyKeyInProgressException если перевод с этим ключом еще не завершился
+     */
+    public boolean sendMoneyToClient(long senderId, String name, long value, @Nullable String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return transferMoney(senderId, name, value, null);
+        }
+
+        Metrics metrics = Metrics.getInstance();
+        String cacheKey = senderId + ":" + idempotencyKey;
+        IdempotentTransfer created = new IdempotentTransfer(name, value);
+        IdempotentTransfer existing = idempotencyCache.putIfAbsent(cacheKey, created);
+        if (existing != null) {
+            metrics.increment("idempotency.cache.hits");
+            if (!existing.hasSameParameters(name, value)) {
+                throw new IdempotencyKeyMismatchException(
+                        "Idempotency key was used for a different transfer: " + idempotencyKey);
+            }
+            return awaitResult(existing.result, idempotencyKey);
+        }
+        metrics.increment("idempotency.cache.misses");
+
+        try {
+            boolean result = transferMoney(senderId, name, value, idempotencyKey);
+            created.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            /* Результат неизвестен - повтор должен выполнить перевод заново */
+            idempotencyCache.remove(cacheKey, created);
+            created.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Ждет результата перевода, начатого другим запросом с тем же ключом, не дольше
+     * <code>IDEMPOTENT_WAIT_SECONDS</code>: зависший перевод не должен занимать потоки сервера.
      */
-    public boolean sendMoneyToClient(BankClient sender, String name, long value) {
-        BankClient recipient = getClientByName(name);
-        if (sender == null || recipient == null || value <= 0) {
+    private static boolean awaitResult(CompletableFuture<Boolean> result, String idempotencyKey) {
+        try {
+            return result.get(IDEMPOTENT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException(
+                    "Transfer with this idempotency key is still in progress: " + idempotencyKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException(
+                    "Interrupted while waiting for idempotency key: " + idempotencyKey);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DBException) {
+                throw (DBException) cause;
+            }
+            if (cause instanceof IdempotencyKeyMismatchException) {
+                throw (IdempotencyKeyMismatchException) cause;
+            }
+            throw new DBException(cause);
+        }
+    }
+
+    private boolean transferMoney(long senderId, String name, long value, @Nullable String idempotencyKey) {
+        if (value <= 0) {
             return false;
         }
         try (BankClientDAO dao = getBankClientDAO()) {
-            if (dao.validateClient(sender.getName(), sender.getPassword())
-                    && dao.isClientHasSum(sender.getName(), value)
-            ) {
-                dao.updateClientsMoney(sender.getName(), sender.getPassword(), -value);
-                dao.updateClientsMoney(name, recipient.getPassword(), value);
-                return true;
-            } else {
+            Long recipientId = dao.getClientIdByName(name);
+            if (recipientId == null || !dao.transferMoney(senderId, recipientId, value, idempotencyKey)) {
                 return false;
             }
-        } catch (SQLException | IllegalStateException e) {
+            DataSourceRouter.getInstance().recordWrite(sessionKey);
+            return true;
+        } catch (SQLException e) {
+            throw new DBException(e);
+        }
+    }
+
+    /**
+     * Удаляет из таблицы ключи идемпотентности старше срока их хранения.
+     *
+     * @return количество удаленных ключей
+     * @throws DBException если во время выполнения запроса было выброшено <code>SQLException</code>
+     */
+    public int purgeIdempotencyKeys() throws DBException {
+        try (BankClientDAO dao = getBankClientDAO()) {
+            return dao.deleteExpiredIdempotencyKeys();
+        } catch (SQLException e) {
             throw new DBException(e);
         }
     }
@@ -141,31 +326,50 @@ public class BankClientService {
         }
     }
 
-    private static Connection getMysqlConnection() {
+    /**
+     * DAO поверх соединения с основным сервером БД - для записи
+     * и для чтений, результат которых используется при записи.
+     */
+    private BankClientDAO getBankClientDAO() {
         try {
-            DriverManager.registerDriver((Driver) Class.forName("com.mysql.cj.jdbc.Driver").newInstance());
-
-            StringBuilder url = new StringBuilder();
-
-            url.
-                    append("jdbc:mysql://").        //db type
-                    append("localhost:").           //host name
-                    append("3306/").                //port
-                    append("bankdb?").              //db name
-                    append("user=root&").           //login
-                    append("password=msql74_&").    //password
-                    append("serverTimezone=UTC");   //timezone
-
-            System.out.println("URL: " + url + "\n");
-            return DriverManager.getConnection(url.toString());
+            return new BankClientDAO(DataSourceRouter.getInstance().getPrimaryConnection());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new IllegalStateException(e);
+        }
+    }
 
-        } catch (SQLException | InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+    /**
+     * DAO поверх соединения с репликой (или с основным сервером, если реплики недоступны)
+     * - только для чтения.
+     */
+    private BankClientDAO getReadBankClientDAO() {
+        try {
+            return new BankClientDAO(DataSourceRouter.getInstance().getReadConnection(sessionKey));
+        } catch (SQLException e) {
             e.printStackTrace();
             throw new IllegalStateException(e);
         }
     }
 
-    private BankClientDAO getBankClientDAO() {
-        return new BankClientDAO(getMysqlConnection());
+    /**
+     * Перевод с ключом идемпотентности: его параметры и результат, пока неизвестный.
+     */
+    private static final class IdempotentTransfer {
+
+        private final String recipientName;
+
+        private final long value;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        IdempotentTransfer(String recipientName, long value) {
+            this.recipientName = recipientName;
+            this.value = value;
+        }
+
+        boolean hasSameParameters(String recipientName, long value) {
+            return this.value == value && this.recipientName.equals(recipientName);
+        }
     }
 }
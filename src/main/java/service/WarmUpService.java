@@ -0,0 +1,138 @@
+package service;
+
+import com.google.gson.Gson;
+import dao.BankClientDAO;
+import model.BankClient;
+import model.Transfer;
+import util.DataSourceRouter;
+import util.Metrics;
+import util.PageGenerator;
+import util.PasswordHasher;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прогрев приложения при старте, до того как оно начнет принимать запросы.
+ * <p>Независимые этапы выполняются параллельно:
+ * <ul>
+ * <li>создание таблиц, заполнение пула соединений с подготовкой частых запросов,
+ * затем синтетические прогоны поиска клиента и перевода;</li>
+ * <li>компиляция всех шаблонов страниц;</li>
+ * <li>прогрев сериализации JSON.</li>
+ * </ul>
+ * Время каждого этапа выводится в лог.
+ */
+public class WarmUpService {
+
+    /**
+     * Имя клиента для синтетических запросов. Они выполняют те же SQL, что и настоящие,
+     * но не изменяют данных: клиента с таким именем нет.
+     */
+    private static final String WARM_UP_CLIENT = "warm-up";
+
+    private static final int ITERATIONS = 100;
+
+    private static final int HASH_ITERATIONS = 3;
+
+    /**
+     * Выполняет все этапы прогрева и ждет их завершения.
+     *
+     * @throws CompletionException если какой-либо этап завершился ошибкой
+     */
+    public void run() {
+        long started = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CompletableFuture<Void> database = phase("tables", this::createTables, executor)
+                    .thenCompose(v -> phase("connection pool", this::prefillConnectionPool, executor))
+                    .thenCompose(v -> phase("lookup and transfer paths", this::runSyntheticRequests, executor));
+            CompletableFuture<Void> templates = phase("templates", this::compileTemplates, executor);
+            CompletableFuture<Void> serializers = phase("serializers", this::primeSerializers, executor);
+
+            CompletableFuture.allOf(database, templates, serializers).join();
+        } finally {
+            executor.shutdown();
+        }
+        System.out.println("Warm-up finished in " + elapsedMillis(started) + " ms");
+    }
+
+    private void createTables() {
+        BankClientService bankClientService = new BankClientService();
+        bankClientService.createTable();
+        int purged = bankClientService.purgeIdempotencyKeys();
+        System.out.println("Warm-up: purged " + purged + " expired idempotency keys");
+    }
+
+    private void prefillConnectionPool() throws SQLException {
+        int opened = DataSourceRouter.getInstance().prefill(
+                connection -> new BankClientDAO(connection).prepareStatements()
+        );
+        System.out.println("Warm-up: opened " + opened + " DB connections");
+    }
+
+    private void runSyntheticRequests() throws SQLException {
+        BankClientService bankClientService = new BankClientService();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bankClientService.getClientByName(WARM_UP_CLIENT);
+            bankClientService.getClientById(-1);
+            bankClientService.getTransfers(WARM_UP_CLIENT, null, 50);
+            bankClientService.sendMoneyToClient(-1, WARM_UP_CLIENT, 1);
+        }
+        /* Сам перевод целиком, с ключом идемпотентности и записью истории, между временными клиентами;
+           все изменения откатываются */
+        try (BankClientDAO dao = new BankClientDAO(DataSourceRouter.getInstance().getPrimaryConnection())) {
+            dao.warmUpTransfers(ITERATIONS);
+            for (int i = 0; i < ITERATIONS; i++) {
+                dao.getTransfers(-1, null, 50);
+            }
+        }
+        String hash = PasswordHasher.hash(WARM_UP_CLIENT);
+        for (int i = 0; i < HASH_ITERATIONS; i++) {
+            PasswordHasher.matches(WARM_UP_CLIENT, hash);
+        }
+    }
+
+    private void compileTemplates() throws Exception {
+        int compiled = PageGenerator.getInstance().compileAll();
+        System.out.println("Warm-up: compiled " + compiled + " templates");
+    }
+
+    private void primeSerializers() {
+        Gson gson = new Gson();
+        BankClient client = new BankClient(1, WARM_UP_CLIENT, WARM_UP_CLIENT, 1);
+        Transfer transfer = new Transfer(1, WARM_UP_CLIENT, 1, System.currentTimeMillis());
+        for (int i = 0; i < ITERATIONS; i++) {
+            gson.fromJson(gson.toJson(client), BankClient.class);
+            gson.toJson(Collections.singletonList(client));
+            gson.fromJson(gson.toJson(transfer), Transfer.class);
+            gson.toJson(Metrics.getInstance().snapshot());
+        }
+    }
+
+    private static CompletableFuture<Void> phase(String name, Phase phase, ExecutorService executor) {
+        return CompletableFuture.runAsync(() -> {
+            long started = System.nanoTime();
+            try {
+                phase.run();
+            } catch (Exception e) {
+                System.out.println("Warm-up phase '" + name + "' failed: " + e);
+                throw new CompletionException(e);
+            }
+            System.out.println("Warm-up phase '" + name + "' took " + elapsedMillis(started) + " ms");
+        }, executor);
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+
+    private interface Phase {
+        void run() throws Exception;
+    }
+}
@@ -1,23 +1,49 @@
 package servlet;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import exception.DBException;
+import model.Transfer;
+import service.AuthService;
 import service.BankClientService;
+import util.Metrics;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.List;
 
 public class ApiServlet extends HttpServlet {
 
+    private static final Gson gson = new Gson();
+
+    private static final String CLIENTS_PATH = "/clients/";
+
+    private static final String TRANSFERS_PATH = "/transfers";
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 500;
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        BankClientService bankClientService = new BankClientService();
-        Gson gson = new Gson();
+        HttpSession session = req.getSession(false);
+        BankClientService bankClientService = new BankClientService(session != null ? session.getId() : null);
+        String pathInfo = req.getPathInfo();
+        if (pathInfo.startsWith(CLIENTS_PATH) && pathInfo.endsWith(TRANSFERS_PATH)
+                && pathInfo.length() > CLIENTS_PATH.length() + TRANSFERS_PATH.length()
+        ) {
+            String name = pathInfo.substring(CLIENTS_PATH.length(), pathInfo.length() - TRANSFERS_PATH.length());
+            writeTransfers(name, req, resp, bankClientService);
+            return;
+        }
         String json;
-        if (req.getPathInfo().contains("all")) {
+        if (req.getPathInfo().contains("metrics")) {
+            json = gson.toJson(Metrics.getInstance().snapshot());
+        } else if (req.getPathInfo().contains("all")) {
             json = gson.toJson(bankClientService.getAllClient());
         } else {
             json = gson.toJson(bankClientService.getClientByName(req.getParameter("name")));
@@ -26,6 +52,75 @@ public class ApiServlet extends HttpServlet {
         resp.setStatus(200);
     }
 
+    /**
+     * <code>GET /api/clients/{name}/transfers?limit=&amp;before=</code> - страница выписки клиента.
+     * <p>Ответ пишется в поток по мере формирования:
+     * <code>{"transfers": [...], "nextBefore": id}</code>, где <code>nextBefore</code> -
+     * значение параметра <code>before</code> для следующей страницы, или <code>null</code>
+     * если страница последняя.
+     * <p>Выписку может получить только сам клиент: сессия должна быть авторизована от его имени.
+     */
+    private void writeTransfers(
+            String name,
+            HttpServletRequest req,
+            HttpServletResponse resp,
+            BankClientService bankClientService
+    )
+            throws IOException {
+
+        String clientName = AuthService.getInstance().getClientName(LoginServlet.getAuthToken(req));
+        if (clientName == null) {
+            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        if (!clientName.equals(name)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        int limit;
+        Long before;
+        try {
+            String limitParam = req.getParameter("limit");
+            String beforeParam = req.getParameter("before");
+            limit = (limitParam != null) ? Integer.parseInt(limitParam) : DEFAULT_PAGE_SIZE;
+            before = (beforeParam != null) ? Long.valueOf(beforeParam) : null;
+        } catch (NumberFormatException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        List<Transfer> transfers = bankClientService.getTransfers(name, before, limit);
+        if (transfers == null) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        JsonWriter writer = new JsonWriter(resp.getWriter());
+        writer.beginObject();
+        writer.name("transfers");
+        writer.beginArray();
+        for (Transfer transfer : transfers) {
+            gson.toJson(transfer, Transfer.class, writer);
+        }
+        writer.endArray();
+        writer.name("nextBefore");
+        if (transfers.size() == limit) {
+            writer.value(transfers.get(transfers.size() - 1).getId());
+        } else {
+            writer.nullValue();
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         super.doPost(req, resp);
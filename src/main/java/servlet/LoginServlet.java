@@ -0,0 +1,113 @@
+package servlet;
+
+import com.sun.istack.internal.Nullable;
+import model.BankClient;
+import service.AuthService;
+import service.BankClientService;
+import util.PageGenerator;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LoginServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        resp.getWriter().println(
+                PageGenerator
+                        .getInstance()
+                        .getPage("loginPage.html", Collections.emptyMap())
+        );
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        /* Получаем параметры*/
+        String name = req.getParameter("name").trim();
+        String password = req.getParameter("password");
+
+        /* Сессию не создаем: клиенты без cookie получали бы новую сессию на каждый запрос */
+        HttpSession session = req.getSession(false);
+        BankClientService bankClientService = new BankClientService(session != null ? session.getId() : null);
+        BankClient client = bankClientService.authenticate(name, password);
+
+        if (client != null) {
+            login(req, client);
+        }
+
+        String resultString = (client != null) ? "Login successful" : "Login failed";
+
+        /* формируем response */
+        Map<String, Object> pageVariables = new HashMap<>();
+        pageVariables.put("message", resultString);
+        resp.getWriter().println(
+                PageGenerator
+                        .getInstance()
+                        .getPage("resultPage.html", pageVariables)
+        );
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    /**
+     * Авторизует HTTP-сессию от имени клиента, пароль которого уже проверен.
+     * Идентификатор сессии при этом меняется, чтобы нельзя было подставить чужую сессию.
+     *
+     * @param req    текущий запрос
+     * @param client авторизованный клиент
+     */
+    static void login(final HttpServletRequest req, final BankClient client) {
+        HttpSession session = req.getSession();
+        AuthService.getInstance().logout((String) session.getAttribute(AuthService.SESSION_ATTRIBUTE));
+        req.changeSessionId();
+        session = req.getSession();
+        session.setAttribute(AuthService.SESSION_ATTRIBUTE, AuthService.getInstance().login(client));
+        session.setAttribute(AuthService.CSRF_ATTRIBUTE, AuthService.getInstance().newCsrfToken());
+    }
+
+    /**
+     * Проверяет, что запрос передал CSRF-токен текущей HTTP-сессии в параметре <code>csrfToken</code>.
+     *
+     * @param req текущий запрос
+     * @return <code>true</code> - если токен передан и совпадает с токеном сессии
+     */
+    static boolean hasValidCsrfToken(final HttpServletRequest req) {
+        String expected = getCsrfToken(req);
+        String actual = req.getParameter(AuthService.CSRF_ATTRIBUTE);
+        return expected != null && actual != null && MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8),
+                actual.getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Возвращает CSRF-токен текущей HTTP-сессии, или <code>null</code> если клиент не выполнял вход.
+     *
+     * @param req текущий запрос
+     */
+    static @Nullable
+    String getCsrfToken(final HttpServletRequest req) {
+        HttpSession session = req.getSession(false);
+        return (session != null) ? (String) session.getAttribute(AuthService.CSRF_ATTRIBUTE) : null;
+    }
+
+    /**
+     * Возвращает токен авторизации из HTTP-сессии, или <code>null</code> если сессии нет
+     * или клиент не выполнял вход.
+     *
+     * @param req текущий запрос
+     */
+    public static @Nullable
+    String getAuthToken(final HttpServletRequest req) {
+        HttpSession session = req.getSession(false);
+        return (session != null) ? (String) session.getAttribute(AuthService.SESSION_ATTRIBUTE) : null;
+    }
+}
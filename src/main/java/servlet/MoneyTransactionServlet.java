@@ -1,27 +1,44 @@
 package servlet;
 
+import exception.IdempotencyKeyInProgressException;
+import exception.IdempotencyKeyMismatchException;
 import model.BankClient;
+import service.AuthService;
 import service.BankClientService;
 import util.PageGenerator;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 public class MoneyTransactionServlet extends HttpServlet {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final int SC_UNPROCESSABLE_ENTITY = 422;
+
     @Override
     protected void doGet(final HttpServletRequest req, final HttpServletResponse resp)
             throws IOException {
 
+        Map<String, Object> pageVariables = new HashMap<>();
+        String sender = AuthService.getInstance().getClientName(LoginServlet.getAuthToken(req));
+        String csrfToken = LoginServlet.getCsrfToken(req);
+        if (sender != null && csrfToken != null) {
+            pageVariables.put("sender", sender);
+            pageVariables.put("csrfToken", csrfToken);
+        }
+        /* Ключ формы: повторная отправка той же формы не выполнит перевод дважды */
+        pageVariables.put("idempotencyKey", UUID.randomUUID().toString());
         resp.getWriter().println(
                 PageGenerator
                         .getInstance()
-                        .getPage("moneyTransactionPage.html", Collections.emptyMap())
+                        .getPage("moneyTransactionPage.html", pageVariables)
         );
         resp.setStatus(HttpServletResponse.SC_OK);
     }
@@ -31,17 +48,53 @@ public class MoneyTransactionServlet extends HttpServlet {
             throws IOException {
 
         /* Получаем параметры*/
-        String senderName = req.getParameter("senderName").trim();
+        String senderName = req.getParameter("senderName");
         String senderPass = req.getParameter("senderPass");
         long count = Long.parseLong(req.getParameter("count"));
         String nameTo = req.getParameter("nameTo").trim();
+        String idempotencyKey = req.getHeader(IDEMPOTENCY_KEY_HEADER);
+        if (idempotencyKey == null) {
+            idempotencyKey = req.getParameter("idempotencyKey");
+        }
+        if (idempotencyKey != null
+                && (idempotencyKey.isEmpty() || idempotencyKey.length() > BankClientService.MAX_IDEMPOTENCY_KEY_LENGTH)
+        ) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        /* Сессию не создаем: клиенты без cookie получали бы новую сессию на каждый запрос */
+        HttpSession session = req.getSession(false);
+        BankClientService bankClientService = new BankClientService(session != null ? session.getId() : null);
 
-        BankClientService bankClientService = new BankClientService();
-        BankClient sender = bankClientService.getClientByName(senderName);
+        /* Клиент, уже выполнивший вход, авторизуется по сессии без обращения к БД.
+           Сессии недостаточно: форма должна содержать CSRF-токен этой сессии */
+        AuthService authService = AuthService.getInstance();
+        String token = LoginServlet.getAuthToken(req);
+        Long senderId = null;
+        if ((senderName == null || senderName.trim().equals(authService.getClientName(token)))
+                && LoginServlet.hasValidCsrfToken(req)
+        ) {
+            senderId = authService.getClientId(token);
+        }
+        if (senderId == null && senderName != null) {
+            BankClient sender = bankClientService.authenticate(senderName.trim(), senderPass);
+            if (sender != null) {
+                LoginServlet.login(req, sender);
+                bankClientService = new BankClientService(req.getSession().getId());
+                senderId = sender.getId();
+            }
+        }
 
-        boolean result = false;
-        if (sender != null && sender.getPassword().equals(senderPass)) {
-            result = bankClientService.sendMoneyToClient(sender, nameTo, count);
+        boolean result;
+        try {
+            result = senderId != null && bankClientService.sendMoneyToClient(senderId, nameTo, count, idempotencyKey);
+        } catch (IdempotencyKeyMismatchException e) {
+            sendResult(resp, SC_UNPROCESSABLE_ENTITY, "Idempotency key was already used for a different transaction");
+            return;
+        } catch (IdempotencyKeyInProgressException e) {
+            sendResult(resp, HttpServletResponse.SC_CONFLICT, "The transaction is still in progress, try again later");
+            return;
         }
 
         String resultString = result
@@ -49,13 +102,19 @@ public class MoneyTransactionServlet extends HttpServlet {
                 : "transaction rejected";
 
         /* формируем response */
+        sendResult(resp, HttpServletResponse.SC_OK, resultString);
+    }
+
+    private static void sendResult(final HttpServletResponse resp, final int status, final String message)
+            throws IOException {
+
+        resp.setStatus(status);
         Map<String, Object> pageVariables = new HashMap<>();
-        pageVariables.put("message", resultString);
+        pageVariables.put("message", message);
         resp.getWriter().println(
                 PageGenerator
                         .getInstance()
                         .getPage("resultPage.html", pageVariables)
         );
-        resp.setStatus(HttpServletResponse.SC_OK);
     }
 }
@@ -0,0 +1,25 @@
+package servlet;
+
+import util.Readiness;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * <code>GET /ready</code> - <code>200</code> после завершения прогрева, до этого <code>503</code>.
+ */
+public class ReadyServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        if (Readiness.getInstance().isReady()) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().write("ready");
+        } else {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.getWriter().write("starting");
+        }
+    }
+}
@@ -7,6 +7,7 @@ import util.PageGenerator;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,7 +34,9 @@ public class RegistrationServlet extends HttpServlet {
         /* Создаем непроверенного клиента */
         BankClient newClient = new BankClient(name, password, money);
 
-        BankClientService bankClientService = new BankClientService();
+        /* Сессию не создаем: клиенты без cookie получали бы новую сессию на каждый запрос */
+        HttpSession session = req.getSession(false);
+        BankClientService bankClientService = new BankClientService(session != null ? session.getId() : null);
 
         boolean result = bankClientService.addClient(newClient);
 
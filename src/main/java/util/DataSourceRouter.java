@@ -0,0 +1,407 @@
+package util;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Маршрутизатор соединений с БД: пишущие запросы идут на основной сервер (primary),
+ * читающие - на реплики.
+ * <p>Настраивается системными свойствами:
+ * <ul>
+ * <li><code>db.primary.url</code> - JDBC URL основного сервера;</li>
+ * <li><code>db.replica.urls</code> - JDBC URL реплик через запятую (по умолчанию реплик нет,
+ * и все запросы идут на основной сервер);</li>
+ * <li><code>db.replica.strategy</code> - <code>round-robin</code> (по умолчанию)
+ * или <code>least-loaded</code>;</li>
+ * <li><code>db.pool.size</code> - максимальное число простаивающих соединений
+ * с каждым сервером (по умолчанию <code>10</code>);</li>
+ * <li><code>db.readYourWrites.ms</code> - сколько миллисекунд после записи чтения той же сессии
+ * идут на основной сервер, чтобы клиент видел свои изменения (по умолчанию <code>0</code> - выключено).</li>
+ * </ul>
+ * Если реплика недоступна, она исключается из ротации на несколько секунд,
+ * а чтение выполняется на следующей реплике или на основном сервере.
+ */
+public class DataSourceRouter {
+
+    private static final String DEFAULT_PRIMARY_URL = "jdbc:mysql://"   //db type
+            + "localhost:"                                               //host name
+            + "3306/"                                                    //port
+            + "bankdb?"                                                  //db name
+            + "user=root&"                                               //login
+            + "password=msql74_&"                                        //password
+            + "serverTimezone=UTC";                                      //timezone
+
+    /**
+     * Настройки драйвера по умолчанию для всех соединений, в том числе с серверами, заданными
+     * через <code>db.primary.url</code> и <code>db.replica.urls</code>.
+     * <p>Свойства, переданные в <code>DriverManager.getConnection(url, info)</code>, перекрывают
+     * одноименные параметры URL, поэтому настройка, уже указанная в URL, сюда не передается
+     * (см. {@link #driverProperties(String)}).
+     */
+    private static final Properties DRIVER_PROPERTIES = new Properties();
+
+    static {
+        DRIVER_PROPERTIES.setProperty("rewriteBatchedStatements", "true");   //multi-row batch inserts
+        DRIVER_PROPERTIES.setProperty("useServerPrepStmts", "true");         //server-side prepared statements
+        DRIVER_PROPERTIES.setProperty("cachePrepStmts", "true");             //reuse them per connection
+    }
+
+    private static final long REPLICA_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final int MAX_TRACKED_WRITES = 1024;
+
+    private static final long VALIDATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final DataSourceRouter router = new DataSourceRouter();
+
+    private final Node primary;
+
+    private final List<Node> replicas;
+
+    private final boolean leastLoaded;
+
+    private final long readYourWritesNanos;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final ConcurrentMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public static DataSourceRouter getInstance() {
+        return router;
+    }
+
+    private DataSourceRouter() {
+        try {
+            DriverManager.registerDriver((Driver) Class.forName("com.mysql.cj.jdbc.Driver").newInstance());
+        } catch (SQLException | InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+            e.printStackTrace();
+            throw new IllegalStateException(e);
+        }
+
+        int poolSize = Integer.getInteger("db.pool.size", 10);
+        primary = new Node(System.getProperty("db.primary.url", DEFAULT_PRIMARY_URL), poolSize);
+
+        List<Node> replicaNodes = new ArrayList<>();
+        for (String url : System.getProperty("db.replica.urls", "").split(",")) {
+            if (!url.trim().isEmpty()) {
+                replicaNodes.add(new Node(url.trim(), poolSize));
+            }
+        }
+        replicas = Collections.unmodifiableList(replicaNodes);
+
+        leastLoaded = "least-loaded".equals(System.getProperty("db.replica.strategy", "round-robin"));
+        readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("db.readYourWrites.ms", 0));
+
+        Metrics.getInstance().registerGauge("db.primary.inFlight", primary.inFlight::get);
+        Metrics.getInstance().registerGauge("db.primary.idle", primary.idle::size);
+
+        System.out.println("DB primary: " + primary.url + ", replicas: " + replicas.size() + "\n");
+    }
+
+    /**
+     * Заполняет пулы соединений основного сервера и реплик.
+     * Недоступные реплики пропускаются и временно исключаются из ротации.
+     *
+     * @param initializer действие над каждым новым соединением
+     * @return количество открытых соединений
+     * @throws SQLException если не удалось подключиться к основному серверу
+     */
+    public int prefill(ConnectionInitializer initializer) throws SQLException {
+        int opened = primary.prefill(initializer);
+        for (Node replica : replicas) {
+            try {
+                opened += replica.prefill(initializer);
+            } catch (SQLException e) {
+                System.out.println("Replica " + replica.url + " is unavailable: " + e.getMessage());
+                replica.markDown();
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Возвращает соединение с основным сервером. Используется для всех пишущих запросов.
+     */
+    public Connection getPrimaryConnection() throws SQLException {
+        return primary.getConnection();
+    }
+
+    /**
+     * Возвращает соединение для чтения: с одной из реплик, или с основным сервером,
+     * если реплик нет, все они недоступны, или данная сессия недавно выполняла запись.
+     *
+     * @param sessionKey идентификатор сессии клиента или <code>null</code>
+     */
+    public Connection getReadConnection(@Nullable String sessionKey) throws SQLException {
+        if (replicas.isEmpty() || isInReadYourWritesWindow(sessionKey)) {
+            return primary.getConnection();
+        }
+        for (Node replica : orderReplicas()) {
+            if (!replica.isAvailable()) {
+                continue;
+            }
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                System.out.println("Replica " + replica.url + " is unavailable: " + e.getMessage());
+                replica.markDown();
+            }
+        }
+        return primary.getConnection();
+    }
+
+    /**
+     * Запоминает момент записи для данной сессии, чтобы последующие чтения
+     * в течение окна read-your-writes шли на основной сервер.
+     *
+     * @param sessionKey идентификатор сессии клиента или <code>null</code>
+     */
+    public void recordWrite(@Nullable String sessionKey) {
+        if (sessionKey == null || readYourWritesNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        lastWrites.put(sessionKey, now);
+        /* Удаляем устаревшие отметки, чтобы карта не росла бесконечно */
+        if (lastWrites.size() > MAX_TRACKED_WRITES) {
+            lastWrites.values().removeIf(writtenAt -> now - writtenAt > readYourWritesNanos);
+        }
+    }
+
+    private boolean isInReadYourWritesWindow(@Nullable String sessionKey) {
+        if (sessionKey == null || readYourWritesNanos <= 0) {
+            return false;
+        }
+        Long writtenAt = lastWrites.get(sessionKey);
+        return writtenAt != null && System.nanoTime() - writtenAt <= readYourWritesNanos;
+    }
+
+    /**
+     * Порядок обхода реплик: по кругу, начиная со следующей,
+     * или по возрастанию числа открытых соединений для стратегии <code>least-loaded</code>.
+     */
+    private List<Node> orderReplicas() {
+        int size = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        List<Node> ordered = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ordered.add(replicas.get((start + i) % size));
+        }
+        if (leastLoaded) {
+            ordered.sort((a, b) -> Integer.compare(a.inFlight.get(), b.inFlight.get()));
+        }
+        return ordered;
+    }
+
+    /**
+     * Возвращает настройки драйвера по умолчанию, кроме тех, что уже заданы в параметрах URL.
+     */
+    private static Properties driverProperties(String url) {
+        Set<String> urlParameters = new HashSet<>();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            for (String parameter : url.substring(query + 1).split("&")) {
+                int eq = parameter.indexOf('=');
+                urlParameters.add((eq >= 0 ? parameter.substring(0, eq) : parameter).toLowerCase(Locale.ROOT));
+            }
+        }
+        Properties properties = new Properties();
+        for (String name : DRIVER_PROPERTIES.stringPropertyNames()) {
+            if (!urlParameters.contains(name.toLowerCase(Locale.ROOT))) {
+                properties.setProperty(name, DRIVER_PROPERTIES.getProperty(name));
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Сервер БД с небольшим пулом соединений.
+     * <p>Выданные соединения оборачиваются в прокси: при закрытии соединение возвращается в пул,
+     * а счетчик открытых соединений уменьшается.
+     */
+    private static final class Node {
+
+        private final String url;
+
+        private final Properties properties;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final BlockingQueue<PooledConnection> idle;
+
+        private volatile long downUntil;
+
+        Node(String url, int poolSize) {
+            this.url = url;
+            this.properties = driverProperties(url);
+            this.idle = new ArrayBlockingQueue<>(poolSize);
+            this.downUntil = System.nanoTime();
+        }
+
+        boolean isAvailable() {
+            return System.nanoTime() - downUntil >= 0;
+        }
+
+        void markDown() {
+            downUntil = System.nanoTime() + REPLICA_RETRY_NANOS;
+        }
+
+        Connection getConnection() throws SQLException {
+            Connection connection = takeIdle();
+            if (connection == null) {
+                connection = DriverManager.getConnection(url, properties);
+            }
+            inFlight.incrementAndGet();
+            return track(connection);
+        }
+
+        /**
+         * Открывает соединения, пока пул не заполнится, и выполняет для каждого
+         * нового соединения <code>initializer</code>.
+         *
+         * @return количество открытых соединений
+         */
+        int prefill(ConnectionInitializer initializer) throws SQLException {
+            int opened = 0;
+            while (idle.remainingCapacity() > 0) {
+                Connection connection = DriverManager.getConnection(url, properties);
+                try {
+                    initializer.init(connection);
+                } catch (SQLException e) {
+                    closeQuietly(connection);
+                    throw e;
+                }
+                if (!idle.offer(new PooledConnection(connection))) {
+                    closeQuietly(connection);
+                    break;
+                }
+                opened++;
+            }
+            return opened;
+        }
+
+        /**
+         * Берет соединение из пула. Соединения, простоявшие в пуле дольше
+         * <code>VALIDATION_INTERVAL_NANOS</code>, перед выдачей проверяются.
+         */
+        private @Nullable
+        Connection takeIdle() {
+            PooledConnection pooled;
+            while ((pooled = idle.poll()) != null) {
+                try {
+                    if (System.nanoTime() - pooled.releasedAt < VALIDATION_INTERVAL_NANOS
+                            || pooled.connection.isValid(1)
+                    ) {
+                        return pooled.connection;
+                    }
+                } catch (SQLException e) {
+                    // соединение неисправно, закрываем и берем следующее
+                }
+                closeQuietly(pooled.connection);
+            }
+            return null;
+        }
+
+        private void release(Connection connection) {
+            inFlight.decrementAndGet();
+            try {
+                if (!connection.isClosed()) {
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();
+                        connection.setAutoCommit(true);
+                    }
+                    if (idle.offer(new PooledConnection(connection))) {
+                        return;
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            closeQuietly(connection);
+        }
+
+        private Connection track(Connection connection) {
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean closed;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!closed) {
+                                closed = true;
+                                release(connection);
+                            }
+                            return null;
+                        case "isClosed":
+                            return closed || connection.isClosed();
+                        default:
+                            if (closed) {
+                                throw new SQLException("Connection is closed");
+                            }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    handler
+            );
+        }
+
+        private static void closeQuietly(Connection connection) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static final class PooledConnection {
+
+        private final Connection connection;
+
+        private final long releasedAt;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.releasedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Действие, выполняемое над каждым новым соединением при заполнении пула,
+     * например подготовка часто используемых запросов.
+     */
+    public interface ConnectionInitializer {
+        void init(Connection connection) throws SQLException;
+    }
+}
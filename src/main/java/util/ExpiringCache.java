@@ -0,0 +1,120 @@
+package util;
+
+import com.sun.istack.internal.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Потокобезопасный кэш ограниченного размера с истечением записей по времени.
+ * <p>Все записи живут одинаковое время, поэтому порядок добавления совпадает с порядком
+ * истечения: устаревшие записи, а при переполнении - самые старые, удаляются с головы очереди.
+ * <p>Очередь хранит сами записи, а не ключи: узел удаленной или замененной записи
+ * просто отбрасывается, когда доходит до головы, и не может вытеснить более новую запись
+ * с тем же ключом. Длина очереди вместе с такими узлами ограничена <code>maxSize</code>.
+ *
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public class ExpiringCache<K, V> {
+
+    private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+
+    private final Queue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    /**
+     * @param maxSize максимальное количество записей
+     * @param ttl     время жизни записи
+     * @param unit    единица измерения <code>ttl</code>
+     */
+    public ExpiringCache(int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Добавляет значение, если по ключу нет действующей записи.
+     *
+     * @return действующее значение, если оно уже было, иначе <code>null</code>
+     */
+    public @Nullable
+    V putIfAbsent(K key, V value) {
+        long now = System.nanoTime();
+        Entry<K, V> created = new Entry<>(key, value, now + ttlNanos);
+        while (true) {
+            Entry<K, V> existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                insertionOrder.add(created);
+                queued.incrementAndGet();
+                evict(now);
+                return null;
+            }
+            if (!existing.isExpired(now)) {
+                return existing.value;
+            }
+            entries.remove(key, existing);
+        }
+    }
+
+    /**
+     * Удаляет запись, только если по ключу хранится именно это значение.
+     */
+    public void remove(K key, V value) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null && entry.value == value) {
+            entries.remove(key, entry);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Удаляет узлы с головы очереди, пока они устарели, уже удалены из кэша,
+     * или очередь длиннее <code>maxSize</code>. Очисткой одновременно занимается только один поток.
+     */
+    private synchronized void evict(long now) {
+        Entry<K, V> oldest;
+        while ((oldest = insertionOrder.peek()) != null) {
+            boolean live = entries.get(oldest.key) == oldest;
+            if (live && !oldest.isExpired(now) && queued.get() <= maxSize) {
+                return;
+            }
+            insertionOrder.poll();
+            queued.decrementAndGet();
+            if (live) {
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    private static final class Entry<K, V> {
+
+        private final K key;
+
+        private final V value;
+
+        private final long expiresAt;
+
+        Entry(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
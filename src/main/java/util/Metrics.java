@@ -0,0 +1,68 @@
+package util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Простой реестр метрик приложения: счетчики и показатели (gauges).
+ * <p>Счетчики построены на <code>LongAdder</code>, поэтому их можно
+ * инкрементировать из любого количества потоков без общей блокировки.
+ */
+public class Metrics {
+
+    private static final Metrics metrics = new Metrics();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static Metrics getInstance() {
+        return metrics;
+    }
+
+    /**
+     * Увеличивает счетчик с данным именем на единицу.
+     *
+     * @param name имя счетчика
+     */
+    public void increment(String name) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Возвращает текущее значение счетчика или <code>0</code>, если такого счетчика нет.
+     *
+     * @param name имя счетчика
+     * @return значение счетчика
+     */
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return (counter != null) ? counter.sum() : 0;
+    }
+
+    /**
+     * Регистрирует показатель, значение которого вычисляется в момент снятия метрик.
+     *
+     * @param name  имя показателя
+     * @param gauge функция, возвращающая текущее значение
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Возвращает снимок всех счетчиков и показателей, упорядоченный по имени.
+     *
+     * @return <code>Map</code> имя метрики - значение
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+        return snapshot;
+    }
+}
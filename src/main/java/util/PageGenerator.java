@@ -18,7 +18,7 @@ public class PageGenerator {
 
     private final Configuration cfg;
 
-    public static PageGenerator getInstance() {
+    public static synchronized PageGenerator getInstance() {
         if (pageGenerator == null) {
             pageGenerator = new PageGenerator();
         }
@@ -36,6 +36,24 @@ public class PageGenerator {
         return stream.toString();
     }
 
+    /**
+     * Загружает и разбирает все шаблоны из каталога <code>templates</code>.
+     * Разобранные шаблоны остаются в кэше <code>Configuration</code>,
+     * поэтому первые запросы не тратят время на их компиляцию.
+     *
+     * @return количество загруженных шаблонов
+     */
+    public int compileAll() throws IOException {
+        File[] files = new File(HTML_DIR).listFiles((dir, name) -> name.endsWith(".html"));
+        if (files == null) {
+            throw new IOException("Templates directory not found: " + HTML_DIR);
+        }
+        for (File file : files) {
+            cfg.getTemplate(HTML_DIR + File.separator + file.getName());
+        }
+        return files.length;
+    }
+
     public PageGenerator() {
         cfg = new Configuration();
     }
@@ -0,0 +1,39 @@
+package util;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Хеширование паролей клиентов алгоритмом BCrypt.
+ * <p>Хеш BCrypt занимает ровно 60 символов, под него и рассчитана колонка
+ * <code>bank_client.password VARCHAR(60)</code>.
+ */
+public class PasswordHasher {
+
+    private static final int LOG_ROUNDS = 10;
+
+    private PasswordHasher() {
+    }
+
+    public static String hash(String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(LOG_ROUNDS));
+    }
+
+    /**
+     * Проверяет пароль по сохраненному значению. Пароли, сохраненные до перехода на BCrypt
+     * открытым текстом, сравниваются напрямую.
+     *
+     * @param password пароль, введенный клиентом
+     * @param stored   значение из таблицы
+     * @return <code>true</code>, если пароль верный
+     */
+    public static boolean matches(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        return isHashed(stored) ? BCrypt.checkpw(password, stored) : stored.equals(password);
+    }
+
+    public static boolean isHashed(String stored) {
+        return stored.length() == 60 && stored.startsWith("$2");
+    }
+}
@@ -0,0 +1,27 @@
+package util;
+
+/**
+ * Признак готовности приложения принимать запросы.
+ * Устанавливается после завершения прогрева при старте.
+ */
+public class Readiness {
+
+    private static final Readiness readiness = new Readiness();
+
+    private volatile boolean ready;
+
+    public static Readiness getInstance() {
+        return readiness;
+    }
+
+    private Readiness() {
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+}